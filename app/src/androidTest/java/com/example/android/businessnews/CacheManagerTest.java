@@ -0,0 +1,276 @@
+package com.example.android.businessnews;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.security.MessageDigest;
+import java.util.Locale;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_MODERATE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Instrumented tests for {@link CacheManager}, using small budgets and a temporary directory.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CacheManagerTest {
+
+    // Size of the data of most entries; on disk each entry takes 8 more bytes
+    private static final int ENTRY_BYTES = 100;
+
+    private static final long FOREVER = Long.MAX_VALUE;
+
+    private File directory;
+    private CacheManager cache;
+
+    @Before
+    public void setUp() {
+        directory = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "cache-manager-test");
+        deleteDirectory();
+        cache = new CacheManager();
+    }
+
+    @After
+    public void tearDown() {
+        deleteDirectory();
+    }
+
+    @Test
+    public void memoryTierEvictsLeastRecentlyUsedAtBudget() {
+        cache.registerMemoryTier(2 * ENTRY_BYTES);
+        cache.put("a", data(1));
+        cache.put("b", data(2));
+        cache.get("a", FOREVER);
+        cache.put("c", data(3));
+
+        assertNull(cache.get("b", FOREVER));
+        assertArrayEquals(data(1), cache.get("a", FOREVER));
+        assertArrayEquals(data(3), cache.get("c", FOREVER));
+        assertEquals(1, cache.getStats().evictions);
+        assertEquals(2 * ENTRY_BYTES, cache.getStats().memoryBytes);
+    }
+
+    @Test
+    public void diskTierEvictsLeastRecentlyUsedAtBudget() {
+        // A memory tier with no room keeps every lookup on disk.
+        cache.registerMemoryTier(0);
+        cache.registerDiskTier(directory, 2 * (ENTRY_BYTES + 8));
+        cache.put("a", data(1));
+        cache.put("b", data(2));
+        cache.get("a", FOREVER);
+        cache.put("c", data(3));
+
+        assertNull(cache.get("b", FOREVER));
+        assertArrayEquals(data(1), cache.get("a", FOREVER));
+        assertArrayEquals(data(3), cache.get("c", FOREVER));
+        assertEquals(1, cache.getStats().evictions);
+        assertEquals(2 * (ENTRY_BYTES + 8), cache.getStats().diskBytes);
+    }
+
+    @Test
+    public void trimTargetDependsOnLevel() {
+        long budget = 1000;
+        assertEquals(500, CacheManager.trimTarget(TRIM_MEMORY_RUNNING_MODERATE, budget));
+        assertEquals(250, CacheManager.trimTarget(TRIM_MEMORY_RUNNING_LOW, budget));
+        assertEquals(0, CacheManager.trimTarget(TRIM_MEMORY_RUNNING_CRITICAL, budget));
+        assertEquals(500, CacheManager.trimTarget(TRIM_MEMORY_UI_HIDDEN, budget));
+        assertEquals(250, CacheManager.trimTarget(TRIM_MEMORY_BACKGROUND, budget));
+        assertEquals(0, CacheManager.trimTarget(TRIM_MEMORY_MODERATE, budget));
+        assertEquals(0, CacheManager.trimTarget(TRIM_MEMORY_COMPLETE, budget));
+    }
+
+    @Test
+    public void onTrimMemoryShrinksMemoryTier() {
+        cache.registerMemoryTier(10 * ENTRY_BYTES);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, data(i));
+        }
+
+        cache.onTrimMemory(TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(5 * ENTRY_BYTES, cache.getStats().memoryBytes);
+        // The most recently used entries are kept.
+        assertNull(cache.get("key4", FOREVER));
+        assertArrayEquals(data(9), cache.get("key9", FOREVER));
+
+        cache.onTrimMemory(TRIM_MEMORY_COMPLETE);
+        assertEquals(0, cache.getStats().memoryBytes);
+    }
+
+    @Test
+    public void onTrimMemoryCountsEntriesMissingFromDiskAsEvictions() {
+        cache.registerMemoryTier(10 * ENTRY_BYTES);
+        cache.registerDiskTier(directory, 3 * ENTRY_BYTES);
+        cache.put("small", data(1));
+        // Over the disk budget, so it only lives in memory.
+        cache.put("large", new byte[5 * ENTRY_BYTES]);
+
+        cache.onTrimMemory(TRIM_MEMORY_COMPLETE);
+
+        CacheManager.Stats stats = cache.getStats();
+        assertEquals(1, stats.demotions);
+        assertEquals(1, stats.evictions);
+        assertArrayEquals(data(1), cache.get("small", FOREVER));
+        assertNull(cache.get("large", FOREVER));
+    }
+
+    @Test
+    public void memoryBudgetDropOfEntryOnDiskIsDemotion() {
+        cache.registerMemoryTier(2 * ENTRY_BYTES);
+        cache.registerDiskTier(directory, 10 * ENTRY_BYTES);
+        cache.put("a", data(1));
+        cache.put("b", data(2));
+        cache.put("c", data(3));
+
+        CacheManager.Stats stats = cache.getStats();
+        assertEquals(1, stats.demotions);
+        assertEquals(0, stats.evictions);
+        assertArrayEquals(data(1), cache.get("a", FOREVER));
+        assertEquals(1, cache.getStats().diskHits);
+    }
+
+    @Test
+    public void diskDropOfEntryInMemoryIsEvictedOnlyWhenItLeavesMemory() {
+        cache.registerMemoryTier(10 * ENTRY_BYTES);
+        cache.registerDiskTier(directory, 2 * (ENTRY_BYTES + 8));
+        cache.put("a", data(1));
+        cache.put("b", data(2));
+        // Pushes "a" off the disk, but it is still in memory.
+        cache.put("c", data(3));
+        assertEquals(0, cache.getStats().evictions);
+
+        cache.onTrimMemory(TRIM_MEMORY_COMPLETE);
+
+        CacheManager.Stats stats = cache.getStats();
+        assertEquals(2, stats.demotions);
+        assertEquals(1, stats.evictions);
+        assertNull(cache.get("a", FOREVER));
+    }
+
+    @Test
+    public void onTrimMemoryWithoutDiskTierEvicts() {
+        cache.registerMemoryTier(10 * ENTRY_BYTES);
+        cache.put("a", data(1));
+
+        cache.onLowMemory();
+
+        assertEquals(0, cache.getStats().demotions);
+        assertEquals(1, cache.getStats().evictions);
+    }
+
+    @Test
+    public void entriesOlderThanMaxAgeAreMisses() {
+        cache.registerMemoryTier(10 * ENTRY_BYTES);
+        cache.registerDiskTier(directory, 10 * ENTRY_BYTES);
+        cache.put("a", data(1));
+
+        assertNull(cache.get("a", -1));
+        assertArrayEquals(data(1), cache.get("a", FOREVER));
+    }
+
+    @Test
+    public void diskHitIsPromotedToMemory() {
+        cache.registerMemoryTier(10 * ENTRY_BYTES);
+        cache.registerDiskTier(directory, 10 * ENTRY_BYTES);
+        cache.put("a", data(1));
+        cache.onTrimMemory(TRIM_MEMORY_COMPLETE);
+
+        assertArrayEquals(data(1), cache.get("a", FOREVER));
+        assertEquals(1, cache.getStats().diskHits);
+        assertEquals(ENTRY_BYTES, cache.getStats().memoryBytes);
+
+        assertArrayEquals(data(1), cache.get("a", FOREVER));
+        assertEquals(1, cache.getStats().memoryHits);
+    }
+
+    @Test
+    public void diskTierSurvivesRestartAndDropsPartialWrites() throws Exception {
+        cache.registerDiskTier(directory, 10 * ENTRY_BYTES);
+        cache.put("a", data(1));
+        // What an interrupted write would leave behind, and an entry too short for its header.
+        File tempFile = new File(directory, fileNameFor("c") + ".tmp");
+        File truncatedFile = new File(directory, fileNameFor("b"));
+        write(tempFile, new byte[4]);
+        write(truncatedFile, new byte[4]);
+
+        CacheManager restarted = new CacheManager();
+        restarted.registerDiskTier(directory, 10 * ENTRY_BYTES);
+
+        assertArrayEquals(data(1), restarted.get("a", FOREVER));
+        assertNull(restarted.get("b", FOREVER));
+        assertNull(restarted.get("c", FOREVER));
+        assertFalse(tempFile.exists());
+        assertFalse(truncatedFile.exists());
+        assertEquals(ENTRY_BYTES + 8, restarted.getStats().diskBytes);
+    }
+
+    @Test
+    public void hitRateCountsBothTiers() {
+        assertEquals(0, cache.getStats().hitRate(), 0);
+
+        cache.registerMemoryTier(10 * ENTRY_BYTES);
+        cache.registerDiskTier(directory, 10 * ENTRY_BYTES);
+        cache.put("a", data(1));
+        cache.get("a", FOREVER);
+        cache.onTrimMemory(TRIM_MEMORY_COMPLETE);
+        cache.get("a", FOREVER);
+        cache.get("missing", FOREVER);
+        cache.get("missing", FOREVER);
+
+        assertEquals(0.5, cache.getStats().hitRate(), 1e-9);
+    }
+
+    // Returns ENTRY_BYTES bytes that differ from entry to entry.
+    private static byte[] data(int seed) {
+        byte[] data = new byte[ENTRY_BYTES];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (seed + i);
+        }
+        return data;
+    }
+
+    // Name of the disk tier's file for the given key.
+    private static String fileNameFor(String key) throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+        StringBuilder name = new StringBuilder();
+        for (byte b : hash) {
+            name.append(String.format(Locale.US, "%02x", b));
+        }
+        return name.toString();
+    }
+
+    private static void write(File file, byte[] data) throws Exception {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(data);
+        } finally {
+            output.close();
+        }
+    }
+
+    private void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,323 @@
+package com.example.android.businessnews;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.widget.ListView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Replays scripted sessions (launch, scroll, refresh, change topic) against a
+ * {@link GuardianStandInServer} and reports the p50 and p99 fetch-to-render latency of each
+ * step, so that transport, caching and parsing changes can be compared under repeatable
+ * network conditions. Each session starts with an empty {@link CacheManager}, so the refresh
+ * step measures a warm cache and the other steps a cold one.
+ * <p>
+ * The harness takes several minutes, so it is skipped unless the {@code harness}
+ * instrumentation argument is {@code true}. Run it on its own with
+ * <pre>
+ * ./gradlew connectedDebugAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=com.example.android.businessnews.FetchLatencyHarnessTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.harness=true
+ * </pre>
+ * or, with the app and test APKs installed, {@code adb shell am instrument -w -e harness true
+ * -e class com.example.android.businessnews.FetchLatencyHarnessTest
+ * com.example.android.businessnews.test/android.support.test.runner.AndroidJUnitRunner}.
+ * <p>
+ * Results are written to the log under the tag {@code FetchLatencyHarness} and sent as
+ * instrumentation status. Each scenario runs 100 sessions unless the {@code sessions}
+ * instrumentation argument says otherwise; with fewer than 100 samples the slowest one is
+ * reported as {@code max} instead of p99.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FetchLatencyHarnessTest {
+
+    // Tag for the log messages
+    private static final String LOG_TAG = "FetchLatencyHarness";
+
+    // Recorded Guardian search response, in the androidTest assets
+    private static final String FIXTURE = "guardian_search_business.json";
+
+    // Seed for the stand-in server, so the same requests fail on every run
+    private static final long SEED = 42;
+
+    // Instrumentation argument that has to be "true" for the harness to run
+    private static final String ARGUMENT_HARNESS = "harness";
+
+    // Instrumentation argument with the number of scripted sessions per scenario
+    private static final String ARGUMENT_SESSIONS = "sessions";
+
+    // Number of scripted sessions per scenario, enough for a meaningful p99
+    private static final int DEFAULT_SESSIONS = 100;
+
+    // Longest time to wait for a load to be drawn
+    private static final long RENDER_TIMEOUT_SECONDS = 30;
+
+    // Topics the session switches between
+    private static final String[] TOPICS = {"Business", "Economics", "Markets"};
+
+    // Names of the steps of a session that fetch news
+    private static final String STEP_LAUNCH = "launch";
+    private static final String STEP_REFRESH = "refresh";
+    private static final String STEP_CHANGE_TOPIC = "change_topic";
+
+    @Rule
+    public ActivityTestRule<MainActivity> activityRule =
+            new ActivityTestRule<>(MainActivity.class, false, false);
+
+    private final BlockingQueue<Render> renders = new LinkedBlockingQueue<>();
+
+    private Instrumentation instrumentation;
+    private Context targetContext;
+    private GuardianStandInServer server;
+    private int sessions;
+
+    @Before
+    public void setUp() throws Exception {
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        targetContext = InstrumentationRegistry.getTargetContext();
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        assumeTrue("Pass -e " + ARGUMENT_HARNESS + " true to run the latency harness",
+                Boolean.parseBoolean(arguments.getString(ARGUMENT_HARNESS)));
+        String sessionsArgument = arguments.getString(ARGUMENT_SESSIONS);
+        sessions = sessionsArgument == null ? DEFAULT_SESSIONS : Integer.parseInt(sessionsArgument);
+
+        server = new GuardianStandInServer(readAsset(FIXTURE), SEED);
+        server.start();
+
+        MainActivity.setOnNewsRenderedListener(new MainActivity.OnNewsRenderedListener() {
+            @Override
+            public void onNewsRendered(long fetchStartNanos, long renderedNanos, int itemCount) {
+                renders.add(new Render(renderedNanos - fetchStartNanos, itemCount));
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server == null) {
+            // The harness was skipped
+            return;
+        }
+        MainActivity.setOnNewsRenderedListener(null);
+        server.shutdown();
+        PreferenceManager.getDefaultSharedPreferences(targetContext).edit()
+                .remove(targetContext.getString(R.string.settings_topic))
+                .commit();
+    }
+
+    @Test
+    public void fastNetwork() throws Exception {
+        runScenario("fast_network");
+    }
+
+    @Test
+    public void slowMobileNetwork() throws Exception {
+        server.setLatencyMillis(300);
+        server.setBandwidthBytesPerSecond(32 * 1024);
+        runScenario("slow_mobile_network");
+    }
+
+    @Test
+    public void flakyNetwork() throws Exception {
+        server.setLatencyMillis(100);
+        server.setErrorRate(0.2);
+        runScenario("flaky_network");
+    }
+
+    @Test
+    public void largePayload() throws Exception {
+        server.setResultCount(200);
+        runScenario("large_payload");
+    }
+
+    /*
+     * Runs the configured number of sessions with the current server settings and reports
+     * their latencies.
+     */
+    private void runScenario(String scenario) throws Exception {
+        // The cache manager is shared by every scenario in the process and keeps its counters
+        CacheManager.Stats cacheStatsAtStart = CacheManager.getInstance(targetContext).getStats();
+
+        Map<String, List<Render>> rendersByStep = new LinkedHashMap<>();
+        rendersByStep.put(STEP_LAUNCH, new ArrayList<Render>());
+        rendersByStep.put(STEP_REFRESH, new ArrayList<Render>());
+        rendersByStep.put(STEP_CHANGE_TOPIC, new ArrayList<Render>());
+
+        for (int i = 0; i < sessions; i++) {
+            runSession(TOPICS[1 + i % (TOPICS.length - 1)], rendersByStep);
+        }
+
+        report(scenario, rendersByStep, cacheStatsAtStart);
+        for (List<Render> stepRenders : rendersByStep.values()) {
+            assertEquals(sessions, stepRenders.size());
+        }
+    }
+
+    /*
+     * Starts from an empty cache: launch, scroll to the end, refresh, then change the topic.
+     */
+    private void runSession(String newTopic, Map<String, List<Render>> rendersByStep)
+            throws Exception {
+        CacheManager.getInstance(targetContext).clear();
+        setTopic(TOPICS[0]);
+        renders.clear();
+
+        Intent intent = new Intent();
+        intent.putExtra(MainActivity.EXTRA_REQUEST_URL, server.getSearchUrl());
+        final MainActivity activity = activityRule.launchActivity(intent);
+        rendersByStep.get(STEP_LAUNCH).add(awaitRender());
+
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ListView listView = (ListView) activity.findViewById(R.id.list);
+                listView.smoothScrollToPosition(listView.getCount() - 1);
+            }
+        });
+        instrumentation.waitForIdleSync();
+
+        refresh(activity);
+        rendersByStep.get(STEP_REFRESH).add(awaitRender());
+
+        setTopic(newTopic);
+        refresh(activity);
+        rendersByStep.get(STEP_CHANGE_TOPIC).add(awaitRender());
+
+        activityRule.finishActivity();
+    }
+
+    private void refresh(final MainActivity activity) {
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                activity.refreshNews();
+            }
+        });
+    }
+
+    private void setTopic(String topic) {
+        PreferenceManager.getDefaultSharedPreferences(targetContext).edit()
+                .putString(targetContext.getString(R.string.settings_topic), topic)
+                .commit();
+    }
+
+    private Render awaitRender() throws InterruptedException {
+        Render render = renders.poll(RENDER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("News were not rendered within " + RENDER_TIMEOUT_SECONDS + "s", render);
+        return render;
+    }
+
+    /*
+     * Logs and sends as instrumentation status the p50 and p99 latency of the loads that
+     * showed news in every step, and how many showed none. The nearest-rank p99 of fewer than
+     * 100 samples is just the slowest sample, so it is labelled as the maximum then.
+     */
+    private void report(String scenario, Map<String, List<Render>> rendersByStep,
+                        CacheManager.Stats cacheStatsAtStart) {
+        Bundle results = new Bundle();
+        for (Map.Entry<String, List<Render>> step : rendersByStep.entrySet()) {
+            // Failed loads render nothing almost at once, so they'd make the latencies look
+            // better than they are; they are only counted.
+            List<Long> latencies = new ArrayList<>();
+            int empty = 0;
+            for (Render render : step.getValue()) {
+                if (render.itemCount == 0) {
+                    empty++;
+                } else {
+                    latencies.add(render.latencyNanos);
+                }
+            }
+            Collections.sort(latencies);
+
+            double p50 = percentile(latencies, 50) / 1e6;
+            double tail = percentile(latencies, 99) / 1e6;
+            String tailName = latencies.size() >= 100 ? "p99" : "max";
+            String key = scenario + "." + step.getKey();
+            results.putDouble(key + ".p50_ms", p50);
+            results.putDouble(key + "." + tailName + "_ms", tail);
+            results.putInt(key + ".empty", empty);
+            Log.i(LOG_TAG, String.format(Locale.US,
+                    "%s: p50=%.1fms %s=%.1fms samples=%d empty=%d", key, p50, tailName, tail, latencies.size(), empty));
+        }
+
+        String summary = scenario + ": requests=" + server.getRequestCount()
+                + " errors=" + server.getErrorCount()
+                + " cache=" + CacheManager.getInstance(targetContext).getStats()
+                .since(cacheStatsAtStart);
+        results.putString(scenario + ".summary", summary);
+        Log.i(LOG_TAG, summary);
+        instrumentation.sendStatus(0, results);
+    }
+
+    /*
+     * Nearest-rank percentile of an ascending list.
+     */
+    private static long percentile(List<Long> sorted, int percent) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+        return sorted.get(Math.max(rank, 1) - 1);
+    }
+
+    private static String readAsset(String name) throws IOException {
+        InputStream inputStream = InstrumentationRegistry.getContext().getAssets().open(name);
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+            StringBuilder output = new StringBuilder();
+            String line = reader.readLine();
+            while (line != null) {
+                output.append(line);
+                line = reader.readLine();
+            }
+            return output.toString();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /*
+     * Fetch-to-render latency of one load and the number of articles it showed.
+     */
+    private static final class Render {
+        final long latencyNanos;
+        final int itemCount;
+
+        Render(long latencyNanos, int itemCount) {
+            this.latencyNanos = latencyNanos;
+            this.itemCount = itemCount;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.android.businessnews;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal local stand-in for the Guardian {@code /search} endpoint.
+ * <p>
+ * It serves a recorded response fixture, expanded or truncated to the configured number of
+ * results, and can add a fixed latency, limit the bandwidth and fail a share of the requests
+ * with a server error. Failures are drawn from a seeded {@link Random} so that runs repeat.
+ */
+public class GuardianStandInServer {
+
+    // Tag for the log messages
+    private static final String LOG_TAG = GuardianStandInServer.class.getSimpleName();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Size of the chunks in which a throttled body is written
+    private static final int CHUNK_BYTES = 1024;
+
+    private final JSONObject fixture;
+    private final Random random;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private ServerSocket serverSocket;
+
+    private volatile long latencyMillis;
+    private volatile long bandwidthBytesPerSecond;
+    private volatile double errorRate;
+    private volatile int resultCount;
+
+    /**
+     * Constructs a new {@link GuardianStandInServer}.
+     *
+     * @param fixture recorded body of a Guardian search response
+     * @param seed    seed for the random numbers that decide which requests fail
+     */
+    public GuardianStandInServer(String fixture, long seed) throws JSONException {
+        this.fixture = new JSONObject(fixture);
+        this.random = new Random(seed);
+        this.resultCount = this.fixture.getJSONObject(QueryUtils.RESPONSE)
+                .getJSONArray(QueryUtils.RESULTS).length();
+    }
+
+    /**
+     * Sets the delay before each response is sent.
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Sets the rate at which response bodies are written; 0 means unlimited.
+     */
+    public void setBandwidthBytesPerSecond(long bandwidthBytesPerSecond) {
+        this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
+    }
+
+    /**
+     * Sets the share of requests (between 0 and 1) answered with HTTP 500.
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Sets the number of results in each response; the fixture's results are repeated as needed.
+     */
+    public void setResultCount(int resultCount) {
+        this.resultCount = resultCount;
+    }
+
+    /**
+     * Starts listening on a free port of the loopback interface.
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+    }
+
+    /**
+     * Stops listening and abandons the requests in flight.
+     */
+    public void shutdown() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the URL to use in place of the Guardian search endpoint.
+     */
+    public String getSearchUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/search";
+    }
+
+    /**
+     * @return the number of search requests received.
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of search requests answered with an error.
+     */
+    public int getErrorCount() {
+        return errorCount.get();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket);
+                    }
+                });
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    Log.e(LOG_TAG, "Problem accepting a connection.", e);
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try {
+            InputStream inputStream = socket.getInputStream();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8));
+            String requestLine = reader.readLine();
+            // Skip the headers; requests from the app have no body.
+            String line = reader.readLine();
+            while (line != null && !line.isEmpty()) {
+                line = reader.readLine();
+            }
+
+            OutputStream outputStream = socket.getOutputStream();
+            String[] parts = requestLine == null ? new String[0] : requestLine.split(" ");
+            if (parts.length < 2 || !parts[1].startsWith("/search")) {
+                writeResponse(outputStream, 404, "Not Found", new byte[0]);
+                return;
+            }
+
+            requestCount.incrementAndGet();
+            Thread.sleep(latencyMillis);
+            if (nextDouble() < errorRate) {
+                errorCount.incrementAndGet();
+                writeResponse(outputStream, 500, "Internal Server Error", new byte[0]);
+            } else {
+                writeResponse(outputStream, 200, "OK", buildBody().getBytes(UTF_8));
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(LOG_TAG, "Problem serving a request.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing a connection.", e);
+            }
+        }
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    /*
+     * Copies the fixture with its results repeated or truncated to resultCount entries.
+     */
+    private String buildBody() throws JSONException {
+        JSONObject body = new JSONObject(fixture.toString());
+        JSONObject response = body.getJSONObject(QueryUtils.RESPONSE);
+        JSONArray recorded = response.getJSONArray(QueryUtils.RESULTS);
+        JSONArray results = new JSONArray();
+        for (int i = 0; i < resultCount && recorded.length() > 0; i++) {
+            results.put(recorded.get(i % recorded.length()));
+        }
+        response.put(QueryUtils.RESULTS, results);
+        response.put("pageSize", resultCount);
+        return body.toString();
+    }
+
+    private void writeResponse(OutputStream outputStream, int code, String reason, byte[] body)
+            throws IOException, InterruptedException {
+        String headers = "HTTP/1.1 " + code + " " + reason + "\r\n"
+                + "Content-Type: application/json; charset=utf-8\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n"
+                + "\r\n";
+        outputStream.write(headers.getBytes(UTF_8));
+
+        long bandwidth = bandwidthBytesPerSecond;
+        if (bandwidth <= 0) {
+            outputStream.write(body);
+        } else {
+            for (int offset = 0; offset < body.length; offset += CHUNK_BYTES) {
+                int length = Math.min(CHUNK_BYTES, body.length - offset);
+                outputStream.write(body, offset, length);
+                outputStream.flush();
+                Thread.sleep(length * 1000L / bandwidth);
+            }
+        }
+        outputStream.flush();
+    }
+}
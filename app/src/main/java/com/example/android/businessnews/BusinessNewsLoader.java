@@ -17,6 +17,9 @@ public class BusinessNewsLoader extends AsyncTaskLoader<List<BusinessNews>> {
     // Query URL
     private String url;
 
+    // Time (System.nanoTime()) at which the latest load started, or 0 once it has been taken
+    private long loadStartNanos;
+
     /**
      * Constructs a new {@link BusinessNewsLoader}.
      *
@@ -33,6 +36,23 @@ public class BusinessNewsLoader extends AsyncTaskLoader<List<BusinessNews>> {
         forceLoad();
     }
 
+    @Override
+    protected void onForceLoad() {
+        loadStartNanos = System.nanoTime();
+        super.onForceLoad();
+    }
+
+    /**
+     * Returns when the load behind the latest result started, for fetch-to-render measurements,
+     * or 0 if it has already been taken, e.g. when a retained result is delivered again.
+     * Call it on the main thread.
+     */
+    long takeLoadStartNanos() {
+        long startNanos = loadStartNanos;
+        loadStartNanos = 0;
+        return startNanos;
+    }
+
     // On a background thread.
     @Override
     public List<BusinessNews> loadInBackground() {
@@ -41,7 +61,8 @@ public class BusinessNewsLoader extends AsyncTaskLoader<List<BusinessNews>> {
         }
 
         // Perform the network request, parse the response, and extract a list of business articles.
-        List<BusinessNews> businessNews = QueryUtils.fetchBusinessNewsData(this.url);
+        List<BusinessNews> businessNews = QueryUtils.fetchBusinessNewsData(this.url,
+                CacheManager.getInstance(getContext()));
         return businessNews;
     }
 }
@@ -0,0 +1,649 @@
+package com.example.android.businessnews;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single authority over the memory and disk used by the app's caches.
+ * <p>
+ * Entries are raw byte arrays (for example HTTP response bodies) kept in a memory tier and,
+ * written through, in a disk tier. Each tier has its own byte budget and drops its least
+ * recently used entries when the budget is exceeded. When the system asks the app to trim
+ * memory, entries are dropped from the memory tier too.
+ * <p>
+ * An entry that leaves memory but is still on disk counts as a demotion; an entry that leaves
+ * the last tier holding it counts as an eviction.
+ */
+public final class CacheManager implements ComponentCallbacks2 {
+
+    // Tag for the log messages
+    private static final String LOG_TAG = CacheManager.class.getSimpleName();
+
+    // Name of the directory (inside the app cache directory) that holds the disk tier
+    private static final String DISK_CACHE_DIR = "news-cache";
+
+    // Disk tier budget
+    private static final long DISK_BUDGET_BYTES = 5L * 1024 * 1024;
+
+    private static CacheManager instance;
+
+    private MemoryTier memoryTier;
+    private DiskTier diskTier;
+
+    // Statistics, guarded by "this"
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+    private long demotions;
+    private long evictions;
+
+    /**
+     * Returns the process-wide {@link CacheManager}. On first use the memory and disk tiers
+     * are registered with budgets sized for the device, and the manager starts listening to
+     * the system's trim memory callbacks.
+     *
+     * @param context any context; only the application context is retained
+     */
+    public static synchronized CacheManager getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            CacheManager cacheManager = new CacheManager();
+            cacheManager.registerMemoryTier(memoryBudgetFor(appContext));
+            cacheManager.registerDiskTier(new File(appContext.getCacheDir(), DISK_CACHE_DIR),
+                    DISK_BUDGET_BYTES);
+            appContext.registerComponentCallbacks(cacheManager);
+            instance = cacheManager;
+        }
+        return instance;
+    }
+
+    /*
+     * Uses 1/16 of the app's heap limit, or 1/32 on devices that report themselves as low-RAM.
+     */
+    private static long memoryBudgetFor(Context context) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        long heapBytes = activityManager.getMemoryClass() * 1024L * 1024L;
+        return activityManager.isLowRamDevice() ? heapBytes / 32 : heapBytes / 16;
+    }
+
+    /**
+     * Registers (or replaces) the memory tier.
+     *
+     * @param budgetBytes maximum number of bytes held in memory
+     */
+    public synchronized void registerMemoryTier(long budgetBytes) {
+        memoryTier = new MemoryTier(budgetBytes);
+    }
+
+    /**
+     * Registers (or replaces) the disk tier.
+     * Only the first get() or put() touches the disk, so this is safe on the main thread.
+     *
+     * @param directory   where entries are stored; created on first use if missing
+     * @param budgetBytes maximum number of bytes stored on disk
+     */
+    public synchronized void registerDiskTier(File directory, long budgetBytes) {
+        diskTier = new DiskTier(directory, budgetBytes);
+    }
+
+    /**
+     * Returns the cached bytes for the given key, or null when there is no entry younger than
+     * maxAgeMillis in either tier. An entry found only on disk is promoted back into memory.
+     */
+    public byte[] get(String key, long maxAgeMillis) {
+        long oldestAllowed = System.currentTimeMillis() - maxAgeMillis;
+        MemoryTier memory = memoryTier();
+        DiskTier disk = diskTier();
+
+        if (memory != null) {
+            Entry entry = memory.get(key);
+            if (entry != null && entry.createdAt >= oldestAllowed) {
+                recordMemoryHit();
+                return entry.data;
+            }
+        }
+        if (disk != null) {
+            Entry entry = disk.get(key);
+            if (entry != null && entry.createdAt >= oldestAllowed) {
+                recordDiskHit();
+                if (memory != null) {
+                    memory.put(key, entry);
+                }
+                return entry.data;
+            }
+        }
+        recordMiss();
+        return null;
+    }
+
+    /**
+     * Returns the cached string for the given key, or null (see {@link #get(String, long)}).
+     */
+    public String getString(String key, long maxAgeMillis) {
+        byte[] data = get(key, maxAgeMillis);
+        return data == null ? null : new String(data, Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Stores the bytes under the given key in the memory tier and writes them through to the
+     * disk tier. Performs disk I/O, so call it from a background thread.
+     */
+    public void put(String key, byte[] data) {
+        Entry entry = new Entry(data, System.currentTimeMillis());
+        MemoryTier memory = memoryTier();
+        DiskTier disk = diskTier();
+        if (memory != null) {
+            memory.put(key, entry);
+        }
+        if (disk != null && !disk.put(key, entry)) {
+            Log.w(LOG_TAG, "Cache entry of " + data.length + " bytes was not stored on disk.");
+        }
+    }
+
+    /**
+     * Stores the string under the given key (see {@link #put(String, byte[])}).
+     */
+    public void putString(String key, String value) {
+        put(key, value.getBytes(Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Removes the entry for the given key from both tiers.
+     */
+    public void remove(String key) {
+        MemoryTier memory = memoryTier();
+        DiskTier disk = diskTier();
+        if (memory != null) {
+            memory.remove(key);
+        }
+        if (disk != null) {
+            disk.remove(key);
+        }
+    }
+
+    /**
+     * Removes every entry from both tiers. Statistics are kept.
+     */
+    public void clear() {
+        MemoryTier memory = memoryTier();
+        DiskTier disk = diskTier();
+        if (memory != null) {
+            memory.trimTo(0);
+        }
+        if (disk != null) {
+            disk.clear();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the hit, miss, demotion and eviction counters.
+     */
+    public synchronized Stats getStats() {
+        MemoryTier memory = memoryTier;
+        DiskTier disk = diskTier;
+        return new Stats(memoryHits, diskHits, misses, demotions, evictions,
+                memory == null ? 0 : memory.size(), disk == null ? 0 : disk.size());
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        MemoryTier memory = memoryTier();
+        if (memory == null) {
+            return;
+        }
+
+        long target = trimTarget(level, memory.budget);
+
+        recordDroppedFromMemory(memory.trimTo(target));
+        Log.i(LOG_TAG, "onTrimMemory(" + level + "): " + getStats());
+    }
+
+    /*
+     * Returns how many bytes the memory tier may keep after a trim memory callback.
+     */
+    static long trimTarget(int level, long budget) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            // The process is in the middle or the end of the LRU list: drop everything we can.
+            return 0;
+        } else if (level >= TRIM_MEMORY_BACKGROUND) {
+            // The process has just entered the LRU list.
+            return budget / 4;
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            // The UI is no longer visible, so nothing on screen needs the cached data.
+            return budget / 2;
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0;
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            return budget / 4;
+        } else {
+            return budget / 2;
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // Nothing to do; cached entries don't depend on the configuration.
+    }
+
+    private synchronized MemoryTier memoryTier() {
+        return memoryTier;
+    }
+
+    private synchronized DiskTier diskTier() {
+        return diskTier;
+    }
+
+    private synchronized void recordMemoryHit() {
+        memoryHits++;
+    }
+
+    private synchronized void recordDiskHit() {
+        diskHits++;
+    }
+
+    private synchronized void recordMiss() {
+        misses++;
+    }
+
+    private synchronized void recordEvictions(int count) {
+        evictions += count;
+    }
+
+    private synchronized void recordDemotions(int count) {
+        demotions += count;
+    }
+
+    /*
+     * Disk is written through on put(), so an entry dropped from memory is only demoted while
+     * the disk tier still has it. Entries that never reached the disk, or have since been
+     * dropped from it, are evicted.
+     */
+    private void recordDroppedFromMemory(List<String> keys) {
+        DiskTier disk = diskTier();
+        int demoted = 0;
+        for (String key : keys) {
+            if (disk != null && disk.contains(key)) {
+                demoted++;
+            }
+        }
+        recordDemotions(demoted);
+        recordEvictions(keys.size() - demoted);
+    }
+
+    /*
+     * A file dropped from disk is only evicted if the entry isn't in memory any more; otherwise
+     * it is counted when it leaves memory.
+     */
+    private void recordDroppedFromDisk(List<String> names) {
+        MemoryTier memory = memoryTier();
+        int evicted = 0;
+        for (String name : names) {
+            if (memory == null || !memory.containsName(name)) {
+                evicted++;
+            }
+        }
+        recordEvictions(evicted);
+    }
+
+    /*
+     * Returns the name of the disk tier's file for the given key: the hex SHA-1 of the key.
+     */
+    private static String nameFor(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(Charset.forName("UTF-8")));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format(Locale.US, "%02x", b));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device ships SHA-1.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Immutable snapshot of the cache statistics.
+     */
+    public static final class Stats {
+        public final long memoryHits;
+        public final long diskHits;
+        public final long misses;
+        public final long demotions;
+        public final long evictions;
+        public final long memoryBytes;
+        public final long diskBytes;
+
+        Stats(long memoryHits, long diskHits, long misses, long demotions, long evictions,
+              long memoryBytes, long diskBytes) {
+            this.memoryHits = memoryHits;
+            this.diskHits = diskHits;
+            this.misses = misses;
+            this.demotions = demotions;
+            this.evictions = evictions;
+            this.memoryBytes = memoryBytes;
+            this.diskBytes = diskBytes;
+        }
+
+        /**
+         * @return the fraction of lookups served by either tier, or 0 if there were none.
+         */
+        public double hitRate() {
+            long lookups = memoryHits + diskHits + misses;
+            return lookups == 0 ? 0 : (double) (memoryHits + diskHits) / lookups;
+        }
+
+        /**
+         * @return the counters accumulated since the earlier snapshot, with the current sizes.
+         */
+        Stats since(Stats earlier) {
+            return new Stats(memoryHits - earlier.memoryHits, diskHits - earlier.diskHits,
+                    misses - earlier.misses, demotions - earlier.demotions,
+                    evictions - earlier.evictions, memoryBytes, diskBytes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "hitRate=%.2f memoryHits=%d diskHits=%d misses=%d "
+                            + "demotions=%d evictions=%d memoryBytes=%d diskBytes=%d",
+                    hitRate(), memoryHits, diskHits, misses, demotions, evictions,
+                    memoryBytes, diskBytes);
+        }
+    }
+
+    /*
+     * Cached bytes together with the time they were stored.
+     */
+    private static final class Entry {
+        final byte[] data;
+        final long createdAt;
+
+        Entry(byte[] data, long createdAt) {
+            this.data = data;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /*
+     * Least recently used map of entries, bounded by the total size of their data.
+     */
+    private final class MemoryTier {
+        final long budget;
+        private final LinkedHashMap<String, Entry> entries =
+                new LinkedHashMap<>(16, 0.75f, true);
+        // Disk file names of the keys in memory, readable without the tier's lock
+        private final Set<String> names =
+                Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        // Written under the tier's lock, read without it
+        private volatile long size;
+
+        MemoryTier(long budget) {
+            this.budget = budget;
+        }
+
+        synchronized Entry get(String key) {
+            return entries.get(key);
+        }
+
+        synchronized void remove(String key) {
+            Entry previous = entries.remove(key);
+            if (previous != null) {
+                size -= previous.data.length;
+                names.remove(nameFor(key));
+            }
+        }
+
+        synchronized void put(String key, Entry entry) {
+            if (entry.data.length > budget) {
+                return;
+            }
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                size -= previous.data.length;
+            }
+            names.add(nameFor(key));
+            size += entry.data.length;
+            recordDroppedFromMemory(trimTo(budget));
+        }
+
+        boolean containsName(String name) {
+            return names.contains(name);
+        }
+
+        // Drops least recently used entries until the tier holds at most maxSize bytes, and
+        // returns their keys.
+        synchronized List<String> trimTo(long maxSize) {
+            List<String> removed = new ArrayList<>();
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                Map.Entry<String, Entry> eldest = iterator.next();
+                size -= eldest.getValue().data.length;
+                iterator.remove();
+                names.remove(nameFor(eldest.getKey()));
+                removed.add(eldest.getKey());
+            }
+            return removed;
+        }
+
+        long size() {
+            return size;
+        }
+    }
+
+    /*
+     * One file per entry, named after a hash of the key. Each file starts with the time the
+     * entry was stored; the file's last-modified time tracks its last use. Entries are written
+     * to a temporary file first and renamed into place, so a file is never seen half-written.
+     * <p>
+     * The directory is only scanned on first use, which happens on a background thread, and the
+     * least recently used order is kept in memory from then on.
+     */
+    private final class DiskTier {
+        private static final String TEMP_SUFFIX = ".tmp";
+
+        private final File directory;
+        private final long budget;
+        // File name to file length, least recently used first
+        private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+        // Copy of the file names in the index, readable without the tier's lock
+        private final Set<String> names =
+                Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private boolean loaded;
+        // Written under the tier's lock, read without it
+        private volatile long size;
+
+        DiskTier(File directory, long budget) {
+            this.directory = directory;
+            this.budget = budget;
+        }
+
+        synchronized Entry get(String key) {
+            loadIfNeeded();
+            File file = fileFor(key);
+            if (files.get(file.getName()) == null) {
+                return null;
+            }
+            if (file.length() < 8) {
+                Log.e(LOG_TAG, "Discarding truncated cache entry " + file);
+                delete(file.getName());
+                return null;
+            }
+            DataInputStream input = null;
+            try {
+                input = new DataInputStream(new FileInputStream(file));
+                long createdAt = input.readLong();
+                byte[] data = new byte[(int) file.length() - 8];
+                input.readFully(data);
+                file.setLastModified(System.currentTimeMillis());
+                return new Entry(data, createdAt);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem reading cache entry " + file, e);
+                delete(file.getName());
+                return null;
+            } finally {
+                closeQuietly(input);
+            }
+        }
+
+        // Returns whether the entry was stored; it isn't when it exceeds the budget or when
+        // writing it fails.
+        synchronized boolean put(String key, Entry entry) {
+            loadIfNeeded();
+            if (entry.data.length + 8 > budget) {
+                return false;
+            }
+            File file = fileFor(key);
+            File tempFile = new File(directory, file.getName() + TEMP_SUFFIX);
+            boolean written = false;
+            DataOutputStream output = null;
+            try {
+                output = new DataOutputStream(new FileOutputStream(tempFile));
+                output.writeLong(entry.createdAt);
+                output.write(entry.data);
+                output.close();
+                output = null;
+                written = true;
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem writing cache entry " + tempFile, e);
+            } finally {
+                closeQuietly(output);
+            }
+
+            if (!written || !tempFile.renameTo(file)) {
+                tempFile.delete();
+                return false;
+            }
+            Long previousLength = files.put(file.getName(), file.length());
+            names.add(file.getName());
+            size += file.length() - (previousLength == null ? 0 : previousLength);
+            recordDroppedFromDisk(trimTo(budget));
+            return true;
+        }
+
+        /*
+         * Not synchronized, so the main thread never waits behind the disk I/O another thread
+         * does while holding the tier's lock.
+         */
+        boolean contains(String key) {
+            return names.contains(fileFor(key).getName());
+        }
+
+        synchronized void remove(String key) {
+            loadIfNeeded();
+            delete(fileFor(key).getName());
+        }
+
+        synchronized void clear() {
+            loadIfNeeded();
+            trimTo(0);
+        }
+
+        long size() {
+            return size;
+        }
+
+        /*
+         * Creates the directory if needed, deletes files left over from interrupted writes and
+         * indexes the remaining ones by their last use.
+         */
+        private void loadIfNeeded() {
+            if (loaded) {
+                return;
+            }
+            loaded = true;
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                Log.e(LOG_TAG, "Unable to create cache directory " + directory);
+            }
+            File[] existing = directory.listFiles();
+            if (existing == null) {
+                return;
+            }
+            Arrays.sort(existing, new Comparator<File>() {
+                @Override
+                public int compare(File first, File second) {
+                    return Long.compare(first.lastModified(), second.lastModified());
+                }
+            });
+            for (File file : existing) {
+                if (file.getName().endsWith(TEMP_SUFFIX)) {
+                    file.delete();
+                } else {
+                    files.put(file.getName(), file.length());
+                    names.add(file.getName());
+                    size += file.length();
+                }
+            }
+        }
+
+        // Deletes least recently used files until the tier holds at most maxSize bytes, and
+        // returns their names.
+        private List<String> trimTo(long maxSize) {
+            List<String> removed = new ArrayList<>();
+            Iterator<String> iterator = files.keySet().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                String name = iterator.next();
+                new File(directory, name).delete();
+                size -= files.get(name);
+                iterator.remove();
+                names.remove(name);
+                removed.add(name);
+            }
+            return removed;
+        }
+
+        private void delete(String name) {
+            Long length = files.remove(name);
+            names.remove(name);
+            if (length != null) {
+                new File(directory, name).delete();
+                size -= length;
+            }
+        }
+
+        private File fileFor(String key) {
+            return new File(directory, nameFor(key));
+        }
+
+        private void closeQuietly(Closeable closeable) {
+            if (closeable != null) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing cache file.", e);
+                }
+            }
+        }
+    }
+}
@@ -11,8 +11,11 @@ import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.support.annotation.VisibleForTesting;
 import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.AdapterView;
 import android.widget.ListView;
 import android.widget.TextView;
@@ -30,6 +33,12 @@ public class MainActivity extends AppCompatActivity
     // URL for business news data
     private static final String REQUEST_URL = "https://content.guardianapis.com/search";
 
+    /*
+     * Intent extra that replaces REQUEST_URL, e.g. to point the app at a local stand-in for the
+     * Guardian API. Only honoured in debug builds.
+     */
+    public static final String EXTRA_REQUEST_URL = "com.example.android.businessnews.REQUEST_URL";
+
     // Constant value for the loader ID.
     private static final int NEWS_LOADER_ID = 1;
 
@@ -39,13 +48,37 @@ public class MainActivity extends AppCompatActivity
     // TextView that is displayed when the list is empty
     private TextView emptyStateTextView;
 
+    // ListView that shows the business articles
+    private ListView businessNewsListView;
+
+    /**
+     * Notified when the result of a load has been drawn; used to measure fetch-to-render latency.
+     */
+    @VisibleForTesting
+    interface OnNewsRenderedListener {
+        void onNewsRendered(long fetchStartNanos, long renderedNanos, int itemCount);
+    }
+
+    private static volatile OnNewsRenderedListener onNewsRenderedListener;
+
+    @VisibleForTesting
+    static void setOnNewsRenderedListener(OnNewsRenderedListener listener) {
+        onNewsRenderedListener = listener;
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        /*
+         * Make sure the cache manager exists before anything is cached, so that it receives
+         * the onTrimMemory() and onLowMemory() callbacks for the whole process.
+         */
+        CacheManager.getInstance(this);
+
         // Find a reference to the {@link ListView} in the layout
-        ListView businessNewsListView = (ListView) findViewById(R.id.list);
+        businessNewsListView = (ListView) findViewById(R.id.list);
 
         emptyStateTextView = (TextView) findViewById(R.id.empty_view);
         businessNewsListView.setEmptyView(emptyStateTextView);
@@ -84,8 +117,11 @@ public class MainActivity extends AppCompatActivity
         // Get details on the currently active default data network
         NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
 
-        // If there is a network connection, fetch data
-        if (networkInfo != null && networkInfo.isConnected()) {
+        /*
+         * If there is a network connection, fetch data. An overridden request URL points at a
+         * local stand-in for the Guardian API, which needs no network.
+         */
+        if (isRequestUrlOverridden() || (networkInfo != null && networkInfo.isConnected())) {
             // Get a reference to the LoaderManager, in order to interact with loaders.
             LoaderManager loaderManager = getLoaderManager();
 
@@ -121,7 +157,7 @@ public class MainActivity extends AppCompatActivity
         );
 
         // Parse breaks apart the URI string that's passed into its parameter
-        Uri baseUri = Uri.parse(REQUEST_URL);
+        Uri baseUri = Uri.parse(getRequestUrl());
 
         // buildUpon prepares the baseUri that we just parsed so we can add query parameters to it
         Uri.Builder uriBuilder = baseUri.buildUpon();
@@ -138,6 +174,34 @@ public class MainActivity extends AppCompatActivity
         return new BusinessNewsLoader(this, uriBuilder.toString());
     }
 
+    /*
+     * Returns the base URL of the Guardian search endpoint, which debug builds allow the
+     * launching intent to override.
+     */
+    private String getRequestUrl() {
+        if (isRequestUrlOverridden()) {
+            return getIntent().getStringExtra(EXTRA_REQUEST_URL);
+        }
+        return REQUEST_URL;
+    }
+
+    /*
+     * Returns whether this is a debug build launched with EXTRA_REQUEST_URL.
+     */
+    private boolean isRequestUrlOverridden() {
+        return BuildConfig.DEBUG
+                && !TextUtils.isEmpty(getIntent().getStringExtra(EXTRA_REQUEST_URL));
+    }
+
+    /**
+     * Restarts the loader, picking up any change to the settings. A response cached for the
+     * same query within {@link QueryUtils#RESPONSE_MAX_AGE_MILLIS} is shown again without
+     * using the network; only a changed query or an expired response is fetched.
+     */
+    void refreshNews() {
+        getLoaderManager().restartLoader(NEWS_LOADER_ID, null, this);
+    }
+
     @Override
     public void onLoadFinished(Loader<List<BusinessNews>> loader, List<BusinessNews> businessNews) {
         // Hide loading indicator because the data has been loaded
@@ -147,10 +211,30 @@ public class MainActivity extends AppCompatActivity
         // Set empty state text to display "No business news found."
         emptyStateTextView.setText(R.string.no_news);
 
+        // Clear the adapter of previous business news data
+        adapter.clear();
+
         // If there is a valid list of {@link BusinessNews}s, then add them to the adapter
         if (businessNews != null && !businessNews.isEmpty()) {
             adapter.addAll(businessNews);
         }
+
+        // Only a fresh result has a start time; a result delivered again after a configuration
+        // change doesn't
+        final long startNanos = ((BusinessNewsLoader) loader).takeLoadStartNanos();
+        final OnNewsRenderedListener listener = onNewsRenderedListener;
+        if (listener != null && startNanos != 0) {
+            final int itemCount = adapter.getCount();
+            businessNewsListView.getViewTreeObserver().addOnPreDrawListener(
+                    new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    businessNewsListView.getViewTreeObserver().removeOnPreDrawListener(this);
+                    listener.onNewsRendered(startNanos, System.nanoTime(), itemCount);
+                    return true;
+                }
+            });
+        }
     }
 
     @Override
@@ -37,6 +37,9 @@ public final class QueryUtils {
     // Tag for the log messages
     private static final String LOG_TAG = QueryUtils.class.getSimpleName();
 
+    // How long a cached response body is used before the news are fetched again
+    public static final long RESPONSE_MAX_AGE_MILLIS = 5 * 60 * 1000;
+
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods.
@@ -48,6 +51,29 @@ public final class QueryUtils {
      * Query the dataset and return a list of {@link BusinessNews} objects.
      */
     public static List<BusinessNews> fetchBusinessNewsData(String requestUrl) {
+        return fetchBusinessNewsData(requestUrl, null);
+    }
+
+    /**
+     * Query the dataset and return a list of {@link BusinessNews} objects. A response body
+     * cached for the same URL within the last {@link #RESPONSE_MAX_AGE_MILLIS} is used instead
+     * of the network, and a fresh response body that parses is added to the cache.
+     *
+     * @param cache where response bodies are cached, or null to always use the network
+     */
+    public static List<BusinessNews> fetchBusinessNewsData(String requestUrl, CacheManager cache) {
+        if (cache != null) {
+            String cachedResponse = cache.getString(requestUrl, RESPONSE_MAX_AGE_MILLIS);
+            if (cachedResponse != null) {
+                List<BusinessNews> cachedBusinessNews = extractFeatureFromJson(cachedResponse);
+                if (cachedBusinessNews != null) {
+                    return cachedBusinessNews;
+                }
+                // The cached body can't be parsed, so drop it and ask the network instead
+                cache.remove(requestUrl);
+            }
+        }
+
         // Creates URL object
         URL url = createUrl(requestUrl);
 
@@ -59,8 +85,14 @@ public final class QueryUtils {
             Log.e(LOG_TAG, "Problem making the HTTP request.", e);
         }
 
-        // Extracts relevant fields from the JSON response and returns them
-        return extractFeatureFromJson(jsonResponse);
+        // Extracts relevant fields from the JSON response
+        List<BusinessNews> businessNews = extractFeatureFromJson(jsonResponse);
+
+        // Only cache a body that could be parsed, never e.g. a captive portal's HTML page
+        if (cache != null && businessNews != null) {
+            cache.putString(requestUrl, jsonResponse);
+        }
+        return businessNews;
     }
 
     /*
@@ -140,7 +172,7 @@ public final class QueryUtils {
 
     /**
      * Returns a list of {@link BusinessNews} objects that has been built up from
-     * parsing the given JSON response.
+     * parsing the given JSON response, or null if the response is not a Guardian search result.
      */
     private static List<BusinessNews> extractFeatureFromJson(String response) {
         // If the JSON string is empty or null, then return early.
@@ -152,11 +184,12 @@ public final class QueryUtils {
         List<BusinessNews> businessNewsList = new ArrayList<>();
 
         // Creates a JSONObject from the JSON response string
-        JSONObject baseJsonResponse = null;
+        JSONObject baseJsonResponse;
         try {
             baseJsonResponse = new JSONObject(response);
         } catch (JSONException e) {
-            e.printStackTrace();
+            Log.e(LOG_TAG, "Problem parsing the business news JSON results.", e);
+            return null;
         }
 
        /*
@@ -164,7 +197,11 @@ public final class QueryUtils {
         * which represents a list of features (or business news).
         */
         JSONObject jsonResponse = baseJsonResponse.optJSONObject(RESPONSE);
-        JSONArray newsArray = jsonResponse.optJSONArray(RESULTS);
+        JSONArray newsArray = jsonResponse == null ? null : jsonResponse.optJSONArray(RESULTS);
+        if (newsArray == null) {
+            Log.e(LOG_TAG, "The JSON response contains no business news results.");
+            return null;
+        }
 
         // For each business article in the newsArray, create a {@link BusinessNews} object
         for (int i = 0; i < newsArray.length(); i++) {